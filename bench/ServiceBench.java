@@ -0,0 +1,78 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Driver for bench/run.sh: generates the small matrices and sends them to a running service
+public class ServiceBench {
+
+    // Usage: ServiceBench gen <dir> <files> | ServiceBench run <port> <files> <client threads>
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("gen")) {
+            generate(Path.of(args[1]), Integer.parseInt(args[2]));
+        } else if (args.length == 4 && args[0].equals("run")) {
+            run(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        } else {
+            throw new IllegalArgumentException("usage: ServiceBench gen <dir> <files> | run <port> <files> <threads>");
+        }
+    }
+
+    // m<i>.csv: 3-12 taxa, 2-9 characters, each column a prefix of the taxa (always compatible)
+    private static void generate(Path dir, int files) throws Exception {
+        Files.createDirectories(dir);
+        Random rnd = new Random(5);
+        for (int f = 0; f < files; f++) {
+            int n = 3 + rnd.nextInt(10), m = 2 + rnd.nextInt(8);
+            int[] k = new int[m];
+            for (int j = 0; j < m; j++) k[j] = rnd.nextInt(n + 1);
+            StringBuilder sb = new StringBuilder("taxon");
+            for (int j = 1; j <= m; j++) sb.append(",C").append(j);
+            sb.append("\n");
+            for (int i = 0; i < n; i++) {
+                sb.append("T").append(i);
+                for (int j = 0; j < m; j++) sb.append(i < k[j] ? ",1" : ",0");
+                sb.append("\n");
+            }
+            Files.writeString(dir.resolve("m" + f + ".csv"), sb.toString());
+        }
+    }
+
+    // POST /run?path=m<i>.csv&out=d<i> for every file, from several client threads over keep-alive
+    private static void run(int port, int files, int threads) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        waitForHealth(client, port);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<?>> jobs = new ArrayList<>();
+        for (int f = 0; f < files; f++) {
+            URI uri = URI.create("http://127.0.0.1:" + port + "/run?path=m" + f + ".csv&out=d" + f);
+            jobs.add(pool.submit(() -> {
+                HttpRequest req = HttpRequest.newBuilder(uri).header("Content-Type", "text/csv")
+                        .POST(HttpRequest.BodyPublishers.noBody()).build();
+                HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
+                if (resp.statusCode() != 200) throw new IllegalStateException(uri + ": " + resp.body());
+                return null;
+            }));
+        }
+        for (Future<?> job : jobs) job.get();
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        pool.shutdown();
+        System.out.printf("service, %d client thread(s): %d jobs in %.1f s (%.2f ms/job)%n", threads, files, ms / 1000.0, (double) ms / files);
+    }
+
+    private static void waitForHealth(HttpClient client, int port) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/health")).build();
+        for (int i = 0; i < 600; i++) {
+            try {
+                if (client.send(req, HttpResponse.BodyHandlers.ofString()).statusCode() == 200) return;
+            } catch (java.io.IOException e) {
+                // not listening yet (warm-up)
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("service did not come up on port " + port);
+    }
+}
@@ -0,0 +1,48 @@
+#!/bin/sh
+# Service mode vs one process per file on many small matrices (README, Service Mode).
+# Usage: bench/run.sh [files [per-process sample]]   (run from the repository root)
+# The per-process figures are timed on the first <sample> files; multiply by files for the total.
+set -e
+FILES=${1:-10000}
+SAMPLE=${2:-200}
+PORT=${PORT:-8799}
+W=build/bench
+
+rm -rf "$W"
+mkdir -p "$W/classes"
+javac -d "$W/classes" src/*.java bench/ServiceBench.java
+jar --create --file "$W/pp-linear.jar" --main-class App -C "$W/classes" .
+java -cp "$W/classes" ServiceBench gen "$W/in" "$FILES"
+
+now_ms() { echo $(( $(date +%s%N) / 1000000 )); }
+
+per_process() {
+    label=$1; shift
+    start=$(now_ms)
+    i=0
+    while [ "$i" -lt "$SAMPLE" ]; do
+        java "$@" "$W/in/m$i.csv" "$W/proc/d$i" > /dev/null
+        i=$((i + 1))
+    done
+    echo "$label: $(( ($(now_ms) - start) / SAMPLE )) ms/file"
+}
+
+per_process "one process per file" -jar "$W/pp-linear.jar"
+java -XX:ArchiveClassesAtExit="$W/pp-linear.jsa" -jar "$W/pp-linear.jar" "$W/in/m0.csv" "$W/train" > /dev/null 2>&1
+per_process "one process per file, AppCDS" -XX:SharedArchiveFile="$W/pp-linear.jsa" -jar "$W/pp-linear.jar"
+per_process "one process per file, AppCDS + C1" -XX:SharedArchiveFile="$W/pp-linear.jsa" -XX:TieredStopAtLevel=1 -jar "$W/pp-linear.jar"
+start=$(now_ms); java -version 2> /dev/null; echo "java -version alone: $(( $(now_ms) - start )) ms"
+
+java -cp "$W/classes" App --serve="$PORT" --in-root="$W/in" --out-root="$W/svc" > "$W/server.log" &
+SERVER=$!
+trap 'kill $SERVER' EXIT
+java -cp "$W/classes" ServiceBench run "$PORT" "$FILES" 1
+java -cp "$W/classes" ServiceBench run "$PORT" "$FILES" 4
+
+# Both ways must write the same files
+i=0
+while [ "$i" -lt "$SAMPLE" ]; do
+    diff -r "$W/proc/d$i" "$W/svc/d$i"
+    i=$((i + 1))
+done
+echo "outputs identical on $SAMPLE files"
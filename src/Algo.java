@@ -47,10 +47,20 @@ public final class Algo {
 
     // Main entry point
     public static BuildResult run(CsvIO.Data data) throws NotPerfectPhylogenyException {
+        return run(data, null);
+    }
+
+    // Same result, with the tree built clade by clade on the given fork-join pool
+    public static BuildResult runParallel(CsvIO.Data data, java.util.concurrent.ForkJoinPool pool) throws NotPerfectPhylogenyException {
+        return run(data, pool);
+    }
+
+    private static BuildResult run(CsvIO.Data data, java.util.concurrent.ForkJoinPool pool) throws NotPerfectPhylogenyException {
         SortResult sr = radixSortColumns(data.C, data.chars);
         BuildArtifacts A;
         try {
-            A = buildArtifacts(sr.Csorted, sr.charsSorted, data.taxa);
+            A = pool == null ? buildArtifacts(sr.Csorted, sr.charsSorted, data.taxa)
+                             : ParallelBuild.buildArtifacts(sr.Csorted, sr.charsSorted, data.taxa, pool);
         } catch (NotPerfectPhylogenyException ex) {
             throw new NotPerfectPhylogenyException(ex.getMessage(), ex.witnessChars, sr, ex.splitsByChar);
         }
@@ -112,11 +122,7 @@ public final class Algo {
     }
 
     // Build tree artifacts
-    private static final class Block {
-        final java.util.LinkedHashSet<Integer> taxa = new java.util.LinkedHashSet<>();
-        Block(java.util.Collection<Integer> s) { this.taxa.addAll(s); }
-    }
-    private static final class BuildArtifacts {
+    static final class BuildArtifacts {
         final List<Set<Integer>> nodes = new ArrayList<>();
         final List<int[]> edges = new ArrayList<>();
         final Map<Integer, List<String>> edgeLabels = new HashMap<>();
@@ -128,67 +134,68 @@ public final class Algo {
     public static BuildArtifacts buildArtifacts(int[][] C, String[] chars, String[] taxaNames)
             throws NotPerfectPhylogenyException {
         int n = C.length, m = C[0].length;
-        List<Block> blocks = new ArrayList<>();
-        Block root = new Block(range(n));
-        blocks.add(root);
-        BuildArtifacts A = new BuildArtifacts();
-        A.nodes.add(new java.util.LinkedHashSet<>(root.taxa));
-        Map<Block, Integer> nodeId = new IdentityHashMap<>();
-        nodeId.put(root, 0);
+        Builder B = new Builder(taxaNames, true);
+        int[] rows = new int[n];
 
         // Process columns from last to first (reverse order for PP algorithm)
         for (int j = m - 1; j >= 0; j--) {
-            java.util.LinkedHashSet<Integer> Oj = new java.util.LinkedHashSet<>();
-            for (int i = 0; i < n; i++) if (C[i][j] == 1) Oj.add(i);
-            if (Oj.isEmpty()) continue;
-            List<Block> touched = new ArrayList<>();
-            for (Block b : blocks) {
-                if (!disjoint(b.taxa, Oj)) touched.add(b);
-            }
-            if (touched.size() == 0) {
-                throw new NotPerfectPhylogenyException("Internal error: character " + chars[j] + " touches no block", List.of(chars[j]), null, A.splitsByChar);
-            }
-            if (touched.size() > 1) {
-                throw new NotPerfectPhylogenyException("Conflict at character " + chars[j] + " (intersects multiple clades)", List.of(chars[j]), null, A.splitsByChar);
-            }
-            Block parent = touched.get(0);
-            if (!parent.taxa.containsAll(Oj)) {
-                throw new NotPerfectPhylogenyException("Conflict at character " + chars[j] + " (not contained in a single clade)", List.of(chars[j]), null, A.splitsByChar);
+            int k = 0;
+            for (int i = 0; i < n; i++) if (C[i][j] == 1) rows[k++] = i;
+            B.add(chars[j], rows, k);
+        }
+        return B.finish();
+    }
+
+    // Incremental tree builder, fed one sorted column at a time (last column first).
+    // Every block is the taxa of one node, so a taxon -> node array is the whole state.
+    static final class Builder {
+        final BuildArtifacts A = new BuildArtifacts();
+        private final int[] blockOf;
+        private int[] blockSize = new int[16];
+        private int nodeCount = 1;
+        private final String[] taxaNames;
+        private final boolean keepSplits;
+
+        Builder(String[] taxaNames, boolean keepSplits) {
+            this.taxaNames = taxaNames;
+            this.keepSplits = keepSplits;
+            this.blockOf = new int[taxaNames.length];
+            blockSize[0] = taxaNames.length;
+        }
+
+        // Place one character; rows[0..k) are the rows with a 1, in ascending order
+        void add(String ch, int[] rows, int k) throws NotPerfectPhylogenyException {
+            if (k == 0) return;
+            int parentNode = blockOf[rows[0]];
+            for (int t = 1; t < k; t++) {
+                if (blockOf[rows[t]] != parentNode) {
+                    throw new NotPerfectPhylogenyException("Conflict at character " + ch + " (intersects multiple clades)", List.of(ch), null, A.splitsByChar);
+                }
             }
-            A.splitsByChar.put(chars[j], toTaxaNames(Oj, taxaNames));
-            if (Oj.equals(parent.taxa)) continue;
-            java.util.LinkedHashSet<Integer> rest = new java.util.LinkedHashSet<>(parent.taxa);
-            rest.removeAll(Oj);
-            int parentNode = nodeId.get(parent);
-            A.nodes.set(parentNode, rest);
-            int childNode = A.nodes.size();
-            A.nodes.add(new java.util.LinkedHashSet<>(Oj));
+            if (keepSplits) A.splitsByChar.put(ch, toTaxaNames(rows, k, taxaNames));
+            if (k == blockSize[parentNode]) return;
+            int childNode = nodeCount++;
+            if (childNode == blockSize.length) blockSize = Arrays.copyOf(blockSize, 2 * childNode);
+            blockSize[parentNode] -= k;
+            blockSize[childNode] = k;
+            for (int t = 0; t < k; t++) blockOf[rows[t]] = childNode;
             int eId = A.edges.size();
             A.edges.add(new int[]{parentNode, childNode});
-            A.edgeLabels.computeIfAbsent(eId, k -> new ArrayList<>()).add(chars[j]);
-            Block bRest = new Block(rest);
-            Block bOj   = new Block(Oj);
-            int idx = blocks.indexOf(parent);
-            blocks.remove(idx);
-            blocks.add(bRest);
-            blocks.add(bOj);
-            nodeId.remove(parent);
-            nodeId.put(bRest, parentNode);
-            nodeId.put(bOj, childNode);
+            A.edgeLabels.computeIfAbsent(eId, x -> new ArrayList<>()).add(ch);
+        }
+
+        // Node taxa as sets (ascending), only once every character is placed
+        BuildArtifacts finish() {
+            for (int v = 0; v < nodeCount; v++) A.nodes.add(new java.util.LinkedHashSet<>());
+            for (int i = 0; i < blockOf.length; i++) A.nodes.get(blockOf[i]).add(i);
+            return A;
         }
-        return A;
     }
 
     // Helpers
-    private static List<Integer> range(int n) { List<Integer> r = new ArrayList<>(n); for (int i=0;i<n;i++) r.add(i); return r; }
-    private static boolean disjoint(Set<Integer> a, Set<Integer> b) {
-        if (a.size() > b.size()) { Set<Integer> t = a; a = b; b = t; }
-        for (Integer x : a) if (b.contains(x)) return false;
-        return true;
-    }
-    private static Set<String> toTaxaNames(Set<Integer> idxs, String[] names) {
+    private static Set<String> toTaxaNames(int[] rows, int k, String[] names) {
         java.util.LinkedHashSet<String> s = new java.util.LinkedHashSet<>();
-        for (int i : idxs) s.add(names[i]);
+        for (int t = 0; t < k; t++) s.add(names[rows[t]]);
         return s;
     }
 }
@@ -1,5 +1,6 @@
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class App {
 // Helper to choose anchor character
@@ -41,146 +42,147 @@ private static String choosePreferChar(Map<String, Set<String>> splitsByChar, St
     }
     return best;
 }
-    public static void main(String[] args) throws Exception {
-    // Read input data from CSV file
-    CsvIO.Data data = CsvIO.read("data/input.csv");
-
-    // Run the main algorithm
-    Algo.BuildResult result;
-    try {
-        result = Algo.run(data);
-    } catch (Algo.NotPerfectPhylogenyException ex) {
-        // Create output folder if needed
-        Files.createDirectories(Path.of("out"));
-        // Write witness file for error case
-        Files.writeString(Path.of("out/witness.txt"), "NOT A PERFECT PHYLOGENY\nconflict: " + String.join(",", ex.witnessChars) + "\n");
-        // Write empty tree file
-        Files.writeString(Path.of("out/tree_unrooted.nwk"), "");
-        // Write sorted matrix if available
-        if (ex.sortResult != null) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("taxon,");
-            sb.append(String.join(",", ex.sortResult.charsSorted));
-            sb.append("\n");
-            for (int i = 0; i < data.taxa.length; i++) {
-                sb.append(data.taxa[i]);
-                for (int j = 0; j < ex.sortResult.Csorted[0].length; j++) {
-                    sb.append(",").append(ex.sortResult.Csorted[i][j]);
-                }
-                sb.append("\n");
-            }
-            Files.writeString(Path.of("out/sorted_matrix.csv"), sb.toString());
-        } else {
-            Files.writeString(Path.of("out/sorted_matrix.csv"), "");
-        }
-        // Write splits file with error note
-        List<String> csv = ex.splitsByChar != null ? Tree.formatSplitsCsv(ex.splitsByChar) : new ArrayList<>();
-        if (!csv.isEmpty()) {
-            csv.set(0, csv.get(0) + ",NOT A PERFECT PHYLOGENY");
+    // Outputs of one job, as the contents of the files written to the output folder
+    public static final class Outputs {
+        public final String newick;
+        public final List<String> splits;
+        public final String witness;
+        public final String sortedMatrix;
+        public final String anchorChar, preferChar;
+        public final String conflict; // conflict message, or null if the matrix is a perfect phylogeny
+        Outputs(String newick, List<String> splits, String witness, String sortedMatrix,
+                String anchorChar, String preferChar, String conflict) {
+            this.newick = newick;
+            this.splits = splits;
+            this.witness = witness;
+            this.sortedMatrix = sortedMatrix;
+            this.anchorChar = anchorChar;
+            this.preferChar = preferChar;
+            this.conflict = conflict;
         }
-        Files.write(Path.of("out/splits.csv"), csv);
-        System.err.println("Conflict: " + ex.getMessage());
-        return;
     }
 
-    // Build tree from results
-    Tree tree = Tree.fromArtifacts(result.nodesTaxa, result.edges, result.edgeLabels);
-    Files.createDirectories(Path.of("out"));
-
-    // Prepare edge labels for Newick format
-    Map<String, Integer> charToEdgeId = new HashMap<>();
-    for (int eId = 0; eId < result.edges.size(); eId++) {
-        List<String> labels = result.edgeLabels.getOrDefault(eId, List.of());
-        for (String label : labels) {
-            charToEdgeId.put(label, eId);
+    // Usage: App [--parallel] [input.csv [outDir]] | App --memory-budget[=<MB>] [input.csv [outDir]] | App --serve[=port] [--in-root=<dir>] [--out-root=<dir>]
+    public static void main(String[] args) throws Exception {
+    List<String> positional = new ArrayList<>();
+    Long memoryBudget = null;
+    Integer servePort = null;
+    String inRoot = null, outRoot = null;
+    boolean parallel = false;
+    for (String arg : args) {
+        if (arg.startsWith("--memory-budget=")) {
+            // Out-of-core mode for matrices larger than RAM
+            memoryBudget = Long.parseLong(arg.substring("--memory-budget=".length())) << 20;
+        } else if (arg.equals("--memory-budget")) {
+            memoryBudget = OutOfCore.DEFAULT_MEMORY_BUDGET;
+        } else if (arg.equals("--parallel")) {
+            // Build the tree clade by clade on the common fork-join pool
+            parallel = true;
+        } else if (arg.equals("--serve")) {
+            servePort = Server.DEFAULT_PORT;
+        } else if (arg.startsWith("--serve=")) {
+            servePort = Integer.parseInt(arg.substring("--serve=".length()));
+        } else if (arg.startsWith("--in-root=")) {
+            // Service jobs may only read input files below this folder
+            inRoot = arg.substring("--in-root=".length());
+        } else if (arg.startsWith("--out-root=")) {
+            // Service jobs may only write their outputs below this folder
+            outRoot = arg.substring("--out-root=".length());
+        } else if (arg.startsWith("--")) {
+            throw new IllegalArgumentException("Unknown option: " + arg);
+        } else {
+            positional.add(arg);
         }
     }
 
-    // Choose anchor and preferred character for Newick
-    String anchorChar = chooseAnchorChar(result.splitsByChar, data.taxa.length);
-    String preferChar = choosePreferChar(result.splitsByChar, anchorChar);
-
-    // Write tree in Newick format
-    String newick;
-    try {
-        newick = tree.toNewickAnchored(data.taxa, charToEdgeId, anchorChar, preferChar);
-    } catch (Exception e) {
-        newick = tree.toNewick(data.taxa);
+    // Reject options that would otherwise be silently ignored
+    if (servePort != null && !positional.isEmpty()) {
+        throw new IllegalArgumentException("--serve takes no input/output paths (send them with each job)");
+    }
+    if (servePort != null && memoryBudget != null) {
+        throw new IllegalArgumentException("--memory-budget cannot be combined with --serve");
+    }
+    if (parallel && memoryBudget != null) {
+        throw new IllegalArgumentException("--parallel cannot be combined with --memory-budget");
+    }
+    if (parallel && servePort != null) {
+        throw new IllegalArgumentException("--parallel cannot be combined with --serve");
+    }
+    if (servePort == null && outRoot != null) {
+        throw new IllegalArgumentException("--out-root only applies to --serve");
+    }
+    if (servePort == null && inRoot != null) {
+        throw new IllegalArgumentException("--in-root only applies to --serve");
     }
-    Files.writeString(Path.of("out/tree_unrooted.nwk"), newick);
 
-    // Write splits file
-    List<String> csv = Tree.formatSplitsCsv(result.splitsByChar);
-    Files.write(Path.of("out/splits.csv"), csv);
+    // Long-lived local service mode
+    if (servePort != null) {
+        Server.start(servePort, Path.of(inRoot != null ? inRoot : "."), Path.of(outRoot != null ? outRoot : "out"));
+        return;
+    }
 
-    // Write witness file
-    Files.writeString(Path.of("out/witness.txt"), result.witness + "\n");
+    String inputFile = positional.size() > 0 ? positional.get(0) : "data/input.csv";
+    String outputDir = positional.size() > 1 ? positional.get(1) : "out";
+    String outFile = Path.of(outputDir, "tree_unrooted.nwk").toString();
 
-    // Write sorted matrix file
-    StringBuilder sb = new StringBuilder();
-    sb.append("taxon,");
-    sb.append(String.join(",", result.sort.charsSorted));
-    sb.append("\n");
-    for (int i = 0; i < data.taxa.length; i++) {
-        sb.append(data.taxa[i]);
-        for (int j = 0; j < result.sort.Csorted[0].length; j++) {
-            sb.append(",").append(result.sort.Csorted[i][j]);
+    if (memoryBudget != null) {
+        try {
+            OutOfCore.run(inputFile, outputDir, memoryBudget);
+        } catch (Algo.NotPerfectPhylogenyException ex) {
+            System.err.println("Conflict: " + ex.getMessage());
+            return;
         }
-        sb.append("\n");
+        System.out.println("Done. Newick in " + outFile);
+        return;
+    }
+
+    Outputs o = compute(CsvIO.read(inputFile), parallel);
+    writeOutputs(o, outputDir);
+    if (o.conflict != null) {
+        System.err.println("Conflict: " + o.conflict);
+        return;
     }
-    Files.writeString(Path.of("out/sorted_matrix.csv"), sb.toString());
 
     // Print summary to console
-    System.out.println("Done. Newick in out/tree_unrooted.nwk");
-    System.out.println("Anchor = " + anchorChar + ", PreferInside = " + preferChar);
+    System.out.println("Done. Newick in " + outFile);
+    System.out.println("Anchor = " + o.anchorChar + ", PreferInside = " + o.preferChar);
 }
 
     // Run algorithm with custom output directory
     public static void runWithOutputDir(String inputFile, String outputDir) throws Exception {
-        // Read input data from CSV file
-        CsvIO.Data data = CsvIO.read(inputFile);
+        Outputs o = compute(CsvIO.read(inputFile));
+        writeOutputs(o, outputDir);
+        if (o.conflict != null) {
+            System.err.println("Test failed - Conflict: " + o.conflict);
+        }
+    }
 
+    // Run the algorithm and render every output in memory; shared by the CLI and the service
+    public static Outputs compute(CsvIO.Data data) {
+        return compute(data, false);
+    }
+
+    public static Outputs compute(CsvIO.Data data, boolean parallel) {
         // Run the main algorithm
         Algo.BuildResult result;
         try {
-            result = Algo.run(data);
+            result = parallel ? Algo.runParallel(data, ForkJoinPool.commonPool()) : Algo.run(data);
         } catch (Algo.NotPerfectPhylogenyException ex) {
-            // Create output folder if needed
-            Files.createDirectories(Path.of(outputDir));
-            // Write witness file for error case
-            Files.writeString(Path.of(outputDir + "/witness.txt"), "NOT A PERFECT PHYLOGENY\nconflict: " + String.join(",", ex.witnessChars) + "\n");
-            // Write empty tree file
-            Files.writeString(Path.of(outputDir + "/tree_unrooted.nwk"), "");
+            // Write witness for error case
+            String witness = "NOT A PERFECT PHYLOGENY\nconflict: " + String.join(",", ex.witnessChars) + "\n";
             // Write sorted matrix if available
-            if (ex.sortResult != null) {
-                StringBuilder sb = new StringBuilder();
-                sb.append("taxon,");
-                sb.append(String.join(",", ex.sortResult.charsSorted));
-                sb.append("\n");
-                for (int i = 0; i < data.taxa.length; i++) {
-                    sb.append(data.taxa[i]);
-                    for (int j = 0; j < ex.sortResult.Csorted[0].length; j++) {
-                        sb.append(",").append(ex.sortResult.Csorted[i][j]);
-                    }
-                    sb.append("\n");
-                }
-                Files.writeString(Path.of(outputDir + "/sorted_matrix.csv"), sb.toString());
-            } else {
-                Files.writeString(Path.of(outputDir + "/sorted_matrix.csv"), "");
-            }
-            // Write splits file with error note
+            String sorted = ex.sortResult != null ? formatSortedMatrix(data.taxa, ex.sortResult) : "";
+            // Write splits with error note
             List<String> csv = ex.splitsByChar != null ? Tree.formatSplitsCsv(ex.splitsByChar) : new ArrayList<>();
             if (!csv.isEmpty()) {
                 csv.set(0, csv.get(0) + ",NOT A PERFECT PHYLOGENY");
             }
-            Files.write(Path.of(outputDir + "/splits.csv"), csv);
-            System.err.println("Test failed - Conflict: " + ex.getMessage());
-            return;
+            // Empty tree
+            return new Outputs("", csv, witness, sorted, null, null, ex.getMessage());
         }
 
         // Build tree from results
         Tree tree = Tree.fromArtifacts(result.nodesTaxa, result.edges, result.edgeLabels);
-        Files.createDirectories(Path.of(outputDir));
 
         // Prepare edge labels for Newick format
         Map<String, Integer> charToEdgeId = new HashMap<>();
@@ -195,35 +197,51 @@ private static String choosePreferChar(Map<String, Set<String>> splitsByChar, St
         String anchorChar = chooseAnchorChar(result.splitsByChar, data.taxa.length);
         String preferChar = choosePreferChar(result.splitsByChar, anchorChar);
 
-        // Write tree in Newick format
+        // Tree in Newick format
         String newick;
         try {
             newick = tree.toNewickAnchored(data.taxa, charToEdgeId, anchorChar, preferChar);
         } catch (Exception e) {
             newick = tree.toNewick(data.taxa);
         }
-        Files.writeString(Path.of(outputDir + "/tree_unrooted.nwk"), newick);
 
-        // Write splits file
-        List<String> csv = Tree.formatSplitsCsv(result.splitsByChar);
-        Files.write(Path.of(outputDir + "/splits.csv"), csv);
+        return new Outputs(newick, Tree.formatSplitsCsv(result.splitsByChar), result.witness + "\n",
+                formatSortedMatrix(data.taxa, result.sort), anchorChar, preferChar, null);
+    }
 
-        // Write witness file
-        Files.writeString(Path.of(outputDir + "/witness.txt"), result.witness + "\n");
+    // Write the four output files into outputDir
+    public static void writeOutputs(Outputs o, String outputDir) throws Exception {
+        // Create output folder if needed
+        Files.createDirectories(Path.of(outputDir));
+        Files.writeString(Path.of(outputDir + "/witness.txt"), o.witness);
+        Files.writeString(Path.of(outputDir + "/tree_unrooted.nwk"), o.newick);
+        Files.writeString(Path.of(outputDir + "/sorted_matrix.csv"), o.sortedMatrix);
+        Files.write(Path.of(outputDir + "/splits.csv"), o.splits);
+    }
 
-        // Write sorted matrix file
+    // Matrix after radix sort (for debugging)
+    private static String formatSortedMatrix(String[] taxa, Algo.SortResult sort) {
         StringBuilder sb = new StringBuilder();
         sb.append("taxon,");
-        sb.append(String.join(",", result.sort.charsSorted));
+        sb.append(String.join(",", sort.charsSorted));
         sb.append("\n");
-        for (int i = 0; i < data.taxa.length; i++) {
-            sb.append(data.taxa[i]);
-            for (int j = 0; j < result.sort.Csorted[0].length; j++) {
-                sb.append(",").append(result.sort.Csorted[i][j]);
+        for (int i = 0; i < taxa.length; i++) {
+            sb.append(taxa[i]);
+            for (int j = 0; j < sort.Csorted[0].length; j++) {
+                sb.append(",").append(sort.Csorted[i][j]);
             }
             sb.append("\n");
         }
-        Files.writeString(Path.of(outputDir + "/sorted_matrix.csv"), sb.toString());
+        return sb.toString();
+    }
+
+    // Run the out-of-core pipeline with a memory budget (bytes) for the matrix buffers
+    public static void runExternalWithOutputDir(String inputFile, String outputDir, long memoryBudget) throws Exception {
+        try {
+            OutOfCore.run(inputFile, outputDir, memoryBudget);
+        } catch (Algo.NotPerfectPhylogenyException ex) {
+            System.err.println("Test failed - Conflict: " + ex.getMessage());
+        }
     }
 
 
@@ -13,55 +13,88 @@ public class CsvIO {
         }
     }
 
+    // Callback for streaming a CSV file row by row without holding the matrix
+    public interface RowHandler {
+        void header(String[] chars) throws Exception;
+        void row(String taxon, int[] feats) throws Exception;
+    }
+
     public static Data read(String filename) throws Exception {
+        try (java.io.BufferedReader br = new java.io.BufferedReader(new java.io.FileReader(filename))) {
+            return read(br);
+        }
+    }
+
+    // Parse a matrix given inline as CSV text (same format as the input files)
+    public static Data parse(String csv) throws Exception {
+        return read(new java.io.BufferedReader(new java.io.StringReader(csv)));
+    }
+
+    private static Data read(java.io.BufferedReader br) throws Exception {
         // Prepare lists for taxa and rows
         java.util.List<String> taxaList = new java.util.ArrayList<>();
         java.util.List<int[]> rows = new java.util.ArrayList<>();
+        String[][] chars = new String[1][];
+
+        scan(br, new RowHandler() {
+            public void header(String[] cs) { chars[0] = cs; }
+            public void row(String taxon, int[] feats) {
+                taxaList.add(taxon);
+                rows.add(feats);
+            }
+        });
+
+        // Build Data object using constructor
+        return new Data(
+            taxaList.toArray(new String[0]),
+            chars[0],
+            rows.toArray(new int[0][])
+        );
+    }
 
+    // Read and validate the file, handing each row to the handler as it is parsed
+    public static void scan(String filename, RowHandler handler) throws Exception {
         // Read file safely
         try (java.io.BufferedReader br = new java.io.BufferedReader(new java.io.FileReader(filename))) {
-            // Read header
-            String headerLine = br.readLine();
-            if (headerLine == null)
-                throw new Exception("Empty file");
-            String[] header = headerLine.split(",");
-            if (header.length < 2 || !header[0].equals("taxon"))
-                throw new Exception("Header must start with 'taxon'");
-            String[] chars = java.util.Arrays.copyOfRange(header, 1, header.length);
+            scan(br, handler);
+        }
+    }
 
-            // Validate character names: must be C1, C2, C3, ...
-            for (int i = 0; i < chars.length; i++) {
-                if (!chars[i].matches("C\\d+")) {
-                    throw new Exception("Character names must be C1, C2, C3, ... only (found: '" + chars[i] + "')");
-                }
-                if (!chars[i].equals("C" + (i + 1))) {
-                    throw new Exception("Character names must be sequential: C1, C2, C3, ... (found: '" + chars[i] + "' at position " + (i + 1) + ")");
-                }
-            }
+    private static void scan(java.io.BufferedReader br, RowHandler handler) throws Exception {
+        // Read header
+        String headerLine = br.readLine();
+        if (headerLine == null)
+            throw new Exception("Empty file");
+        String[] header = headerLine.split(",");
+        if (header.length < 2 || !header[0].equals("taxon"))
+            throw new Exception("Header must start with 'taxon'");
+        String[] chars = java.util.Arrays.copyOfRange(header, 1, header.length);
 
-            // Read data rows
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.isBlank()) continue;
-                String[] cols = line.split(",");
-                if (cols.length != header.length)
-                    throw new Exception("Row length mismatch");
-                taxaList.add(cols[0]);
-                int[] feats = new int[chars.length];
-                for (int i = 1; i < cols.length; i++) {
-                    if (!cols[i].equals("0") && !cols[i].equals("1"))
-                        throw new Exception("Feature must be 0 or 1");
-                    feats[i - 1] = Integer.parseInt(cols[i]);
-                }
-                rows.add(feats);
+        // Validate character names: must be C1, C2, C3, ...
+        for (int i = 0; i < chars.length; i++) {
+            if (!chars[i].matches("C\\d+")) {
+                throw new Exception("Character names must be C1, C2, C3, ... only (found: '" + chars[i] + "')");
+            }
+            if (!chars[i].equals("C" + (i + 1))) {
+                throw new Exception("Character names must be sequential: C1, C2, C3, ... (found: '" + chars[i] + "' at position " + (i + 1) + ")");
             }
+        }
+        handler.header(chars);
 
-            // Build Data object using constructor
-            return new Data(
-                taxaList.toArray(new String[0]),
-                chars,
-                rows.toArray(new int[0][])
-            );
+        // Read data rows
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.isBlank()) continue;
+            String[] cols = line.split(",");
+            if (cols.length != header.length)
+                throw new Exception("Row length mismatch");
+            int[] feats = new int[chars.length];
+            for (int i = 1; i < cols.length; i++) {
+                if (!cols[i].equals("0") && !cols[i].equals("1"))
+                    throw new Exception("Feature must be 0 or 1");
+                feats[i - 1] = Integer.parseInt(cols[i]);
+            }
+            handler.row(cols[0], feats);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,444 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+// External-memory pipeline for matrices larger than RAM
+public final class OutOfCore {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+    private static final int IO_BUFFER = 1 << 16;
+
+    private OutOfCore() {}
+
+    /**
+     * Same outputs as App.runWithOutputDir, but the matrix never has to fit in memory.
+     * Rows are spilled to temporary files as packed column blocks, columns are sorted by an
+     * external multiway merge on their keys, and the tree is fed one sorted column at a time.
+     * The budget bounds the matrix buffers. Per-taxon state is kept compact while streaming
+     * (names plus a few ints per taxon); the node sets for Tree are only built at the end.
+     * On a conflict the outputs are written first and the exception is rethrown.
+     */
+    public static void run(String inputFile, String outputDir, long memoryBudget) throws Exception {
+        if (memoryBudget <= 0) throw new IllegalArgumentException("Memory budget must be positive");
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        if (memoryBudget > maxHeap) {
+            throw new IllegalArgumentException("Memory budget (" + (memoryBudget >> 20) + " MB) exceeds the maximum heap ("
+                    + (maxHeap >> 20) + " MB); lower --memory-budget or raise -Xmx");
+        }
+        Path tmp = Files.createTempDirectory("pp-linear-");
+        try {
+            ChunkWriter spill = new ChunkWriter(tmp, memoryBudget);
+            CsvIO.scan(inputFile, spill);
+            spill.finish();
+            int n = spill.taxa.size();
+            if (n == 0) throw new IllegalArgumentException("Empty matrix");
+            String[] taxa = spill.taxa.toArray(new String[0]);
+            int W = (n + 63) >>> 6;
+
+            Path sorted = sortColumns(spill, W, tmp, memoryBudget);
+            Files.createDirectories(Path.of(outputDir));
+            writeSortedMatrix(sorted, taxa, spill.m, W, memoryBudget, Path.of(outputDir + "/sorted_matrix.csv"));
+            build(sorted, taxa, canonicalRows(taxa), spill.m, W, memoryBudget, tmp, outputDir);
+        } finally {
+            deleteRecursively(tmp);
+        }
+    }
+
+    // Rows per in-memory band: a multiple of 64 so every column segment is whole words
+    private static int rowsPerBand(int m, long budget) {
+        long rows = (budget * 8 / Math.max(1, m)) / 64 * 64;
+        return (int) Math.max(64, Math.min(rows, (Integer.MAX_VALUE / Math.max(1, m)) / 64 * 64));
+    }
+
+    // Pass 1: stream the CSV and spill one file per row chunk, holding every column's bits for those rows.
+    // Bit r of a column segment sits at the top of its word first, so keys compare as unsigned longs.
+    // The buffer starts at one word per column and doubles as rows arrive, up to the chunk size.
+    private static final class ChunkWriter implements CsvIO.RowHandler {
+        final Path tmp;
+        final long budget;
+        final List<String> taxa = new ArrayList<>();
+        final List<Path> chunks = new ArrayList<>();
+        final List<Integer> chunkWords = new ArrayList<>();
+        int m, rowsPerChunk, maxWords, wpc, rows;
+        long[] buf;
+
+        ChunkWriter(Path tmp, long budget) { this.tmp = tmp; this.budget = budget; }
+
+        public void header(String[] chars) {
+            m = chars.length;
+            rowsPerChunk = rowsPerBand(m, budget);
+            maxWords = rowsPerChunk >>> 6;
+            wpc = 1;
+            buf = new long[m];
+        }
+
+        public void row(String taxon, int[] feats) throws IOException {
+            taxa.add(taxon);
+            int w = rows >>> 6;
+            if (w == wpc) grow();
+            long bit = 1L << (63 - (rows & 63));
+            for (int j = 0; j < m; j++) {
+                if (feats[j] == 1) buf[j * wpc + w] |= bit;
+            }
+            if (++rows == rowsPerChunk) flush();
+        }
+
+        void finish() throws IOException {
+            if (rows > 0) flush();
+            buf = null;
+        }
+
+        private void grow() {
+            int next = Math.min(maxWords, 2 * wpc);
+            long[] b = new long[m * next];
+            for (int j = 0; j < m; j++) System.arraycopy(buf, j * wpc, b, j * next, wpc);
+            buf = b;
+            wpc = next;
+        }
+
+        private void flush() throws IOException {
+            int used = (rows + 63) >>> 6;
+            Path p = tmp.resolve("chunk" + chunks.size() + ".bin");
+            try (DataOutputStream out = output(p)) {
+                for (int j = 0; j < m; j++) {
+                    for (int w = 0; w < used; w++) out.writeLong(buf[j * wpc + w]);
+                }
+            }
+            chunks.add(p);
+            chunkWords.add(used);
+            Arrays.fill(buf, 0L);
+            rows = 0;
+        }
+    }
+
+    // Pass 2: sort column keys into runs that fit the budget, then merge them.
+    // A sorted record is the original column index followed by its W key words.
+    private static Path sortColumns(ChunkWriter S, int W, Path tmp, long budget) throws IOException {
+        int m = S.m;
+        long recordBytes = 4 + 8L * W;
+        int perRun = (int) Math.max(1, Math.min(m, Math.min(budget / (recordBytes + 16), Integer.MAX_VALUE / W)));
+        List<Path> runs = new ArrayList<>();
+        for (int g0 = 0; g0 < m; g0 += perRun) {
+            int cnt = Math.min(perRun, m - g0);
+            long[] keys = new long[cnt * W];
+            // Columns [g0, g0+cnt) are contiguous inside every chunk file
+            int wordBase = 0;
+            for (int k = 0; k < S.chunks.size(); k++) {
+                int used = S.chunkWords.get(k);
+                try (FileChannel ch = FileChannel.open(S.chunks.get(k), StandardOpenOption.READ)) {
+                    ch.position((long) g0 * used * 8);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), IO_BUFFER));
+                    for (int c = 0; c < cnt; c++) {
+                        for (int w = 0; w < used; w++) keys[c * W + wordBase + w] = in.readLong();
+                    }
+                }
+                wordBase += used;
+            }
+            Integer[] idx = new Integer[cnt];
+            for (int c = 0; c < cnt; c++) idx[c] = c;
+            // Stable, so equal columns keep their original order as in radixSortColumns
+            Arrays.sort(idx, (a, b) -> compareKeys(keys, a * W, keys, b * W, W));
+            Path run = tmp.resolve("run" + runs.size() + ".bin");
+            try (DataOutputStream out = output(run)) {
+                for (int c : idx) {
+                    out.writeInt(g0 + c);
+                    for (int w = 0; w < W; w++) out.writeLong(keys[c * W + w]);
+                }
+            }
+            runs.add(run);
+        }
+
+        // Multiway merge, in several passes if the budget cannot hold a reader per run
+        int fanIn = (int) Math.max(2, Math.min(1024, budget / (IO_BUFFER + 2 * recordBytes)));
+        int pass = 0;
+        while (runs.size() > 1) {
+            List<Path> next = new ArrayList<>();
+            for (int i = 0; i < runs.size(); i += fanIn) {
+                List<Path> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+                if (group.size() == 1) { next.add(group.get(0)); continue; }
+                Path merged = tmp.resolve("merge" + pass + "_" + next.size() + ".bin");
+                mergeRuns(group, merged, W);
+                for (Path p : group) Files.delete(p);
+                next.add(merged);
+            }
+            runs = next;
+            pass++;
+        }
+        for (Path p : S.chunks) Files.delete(p);
+        return runs.get(0);
+    }
+
+    // Lexicographic order on column keys (row 0 first, 0 before 1)
+    private static int compareKeys(long[] a, int ao, long[] b, int bo, int W) {
+        for (int w = 0; w < W; w++) {
+            int c = Long.compareUnsigned(a[ao + w], b[bo + w]);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    private static final class RunReader {
+        final DataInputStream in;
+        long remaining;
+        int col;
+        final long[] key;
+        RunReader(Path p, int W) throws IOException {
+            this.in = input(p);
+            this.remaining = Files.size(p) / (4 + 8L * W);
+            this.key = new long[W];
+        }
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            col = in.readInt();
+            for (int w = 0; w < key.length; w++) key[w] = in.readLong();
+            return true;
+        }
+    }
+
+    private static void mergeRuns(List<Path> group, Path dest, int W) throws IOException {
+        // Ties go to the smaller column index, which keeps the merge stable across runs
+        PriorityQueue<RunReader> pq = new PriorityQueue<>((a, b) -> {
+            int c = compareKeys(a.key, 0, b.key, 0, W);
+            return c != 0 ? c : Integer.compare(a.col, b.col);
+        });
+        List<RunReader> readers = new ArrayList<>();
+        try (DataOutputStream out = output(dest)) {
+            for (Path p : group) {
+                RunReader r = new RunReader(p, W);
+                readers.add(r);
+                if (r.next()) pq.add(r);
+            }
+            while (!pq.isEmpty()) {
+                RunReader r = pq.poll();
+                out.writeInt(r.col);
+                for (int w = 0; w < W; w++) out.writeLong(r.key[w]);
+                if (r.next()) pq.add(r);
+            }
+        } finally {
+            for (RunReader r : readers) r.in.close();
+        }
+    }
+
+    // Write sorted_matrix.csv by transposing the sorted columns back into rows, one band at a time
+    private static void writeSortedMatrix(Path sorted, String[] taxa, int m, int W, long budget, Path dest) throws IOException {
+        long recordBytes = 4 + 8L * W;
+        int[] order = new int[m];
+        try (DataInputStream in = input(sorted)) {
+            for (int p = 0; p < m; p++) {
+                order[p] = in.readInt();
+                in.skipNBytes(8L * W);
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(dest);
+             RandomAccessFile raf = new RandomAccessFile(sorted.toFile(), "r")) {
+            out.write("taxon");
+            for (int p = 0; p < m; p++) out.write(",C" + (order[p] + 1));
+            out.write("\n");
+            int bandWords = Math.min(W, rowsPerBand(m, budget) >>> 6);
+            long[] band = new long[m * bandWords];
+            byte[] bytes = new byte[bandWords * 8];
+            for (int w0 = 0; w0 < W; w0 += bandWords) {
+                int words = Math.min(bandWords, W - w0);
+                for (int p = 0; p < m; p++) {
+                    raf.seek(p * recordBytes + 4 + 8L * w0);
+                    raf.readFully(bytes, 0, words * 8);
+                    ByteBuffer bb = ByteBuffer.wrap(bytes);
+                    for (int w = 0; w < words; w++) band[p * bandWords + w] = bb.getLong();
+                }
+                int rowEnd = Math.min(taxa.length, (w0 + words) * 64);
+                StringBuilder sb = new StringBuilder();
+                for (int i = w0 * 64; i < rowEnd; i++) {
+                    int w = (i >>> 6) - w0;
+                    long bit = 1L << (63 - (i & 63));
+                    sb.setLength(0);
+                    sb.append(taxa[i]);
+                    for (int p = 0; p < m; p++) {
+                        sb.append((band[p * bandWords + w] & bit) != 0 ? ",1" : ",0");
+                    }
+                    sb.append("\n");
+                    out.write(sb.toString());
+                }
+            }
+        }
+    }
+
+    // Pass 3: feed the builder from the last sorted column to the first, streaming splits to disk
+    private static void build(Path sorted, String[] taxa, int[] canon, int m, int W, long budget, Path tmp, String outputDir) throws Exception {
+        int n = taxa.length;
+        int recordBytes = 4 + 8 * W;
+        Algo.Builder B = new Algo.Builder(taxa, false);
+        Path splitsBody = tmp.resolve("splits.body");
+        Algo.NotPerfectPhylogenyException conflict = null;
+
+        // Anchor selection as in App.chooseAnchorChar: largest non-trivial split, else smallest name
+        String anchorChar = null, firstChar = null;
+        int anchorSize = -1;
+        long[] anchorKey = null, firstKey = null;
+
+        // Columns read per seek: as many sorted records as the budget holds
+        int batch = (int) Math.max(1, Math.min(m, Math.min(budget, Integer.MAX_VALUE) / recordBytes));
+        int[] rows = new int[n];
+        byte[] buf = new byte[batch * recordBytes];
+        try (RandomAccessFile raf = new RandomAccessFile(sorted.toFile(), "r");
+             BufferedWriter splits = Files.newBufferedWriter(splitsBody)) {
+            outer:
+            for (int hi = m; hi > 0; hi -= batch) {
+                int lo = Math.max(0, hi - batch);
+                raf.seek((long) lo * recordBytes);
+                raf.readFully(buf, 0, (hi - lo) * recordBytes);
+                for (int p = hi - 1; p >= lo; p--) {
+                    ByteBuffer bb = ByteBuffer.wrap(buf, (p - lo) * recordBytes, recordBytes);
+                    int col = bb.getInt();
+                    long[] key = new long[W];
+                    int sz = 0;
+                    for (int w = 0; w < W; w++) {
+                        long x = key[w] = bb.getLong();
+                        while (x != 0) {
+                            int lz = Long.numberOfLeadingZeros(x);
+                            rows[sz++] = w * 64 + lz;
+                            x &= ~(1L << (63 - lz));
+                        }
+                    }
+                    if (sz == 0) continue;
+                    String ch = "C" + (col + 1);
+                    try {
+                        B.add(ch, rows, sz);
+                    } catch (Algo.NotPerfectPhylogenyException ex) {
+                        conflict = ex;
+                        break outer;
+                    }
+
+                    // Clades are sets of names, as in Algo: a repeated name is listed and counted once
+                    Set<String> names = new TreeSet<>();
+                    for (int t = 0; t < sz; t++) names.add(taxa[rows[t]]);
+                    splits.write((col + 1) + "," + String.join("", names));
+                    splits.newLine();
+
+                    int size = names.size();
+                    if (size != n && (size > anchorSize || (size == anchorSize && ch.compareTo(anchorChar) < 0))) {
+                        anchorChar = ch;
+                        anchorSize = size;
+                        anchorKey = key;
+                    }
+                    if (firstChar == null || ch.compareTo(firstChar) < 0) {
+                        firstChar = ch;
+                        firstKey = key;
+                    }
+                }
+            }
+        }
+
+        // splits.csv: header (with the error note on conflict) followed by the streamed rows
+        try (OutputStream out = Files.newOutputStream(Path.of(outputDir + "/splits.csv"))) {
+            String header = "character,clade" + (conflict != null ? ",NOT A PERFECT PHYLOGENY" : "");
+            out.write((header + System.lineSeparator()).getBytes());
+            Files.copy(splitsBody, out);
+        }
+
+        if (conflict != null) {
+            Files.writeString(Path.of(outputDir + "/witness.txt"), "NOT A PERFECT PHYLOGENY\nconflict: " + String.join(",", conflict.witnessChars) + "\n");
+            Files.writeString(Path.of(outputDir + "/tree_unrooted.nwk"), "");
+            throw conflict;
+        }
+
+        if (anchorChar == null) {
+            anchorChar = firstChar;
+            anchorKey = firstKey;
+        }
+        String preferChar = anchorChar == null ? null : choosePreferChar(sorted, m, W, anchorChar, anchorKey, canon);
+
+        // Build tree from results
+        Algo.BuildArtifacts A = B.finish();
+        Tree tree = Tree.fromArtifacts(A.nodes, A.edges, A.edgeLabels);
+        Map<String, Integer> charToEdgeId = new HashMap<>();
+        for (int eId = 0; eId < A.edges.size(); eId++) {
+            for (String label : A.edgeLabels.getOrDefault(eId, List.of())) {
+                charToEdgeId.put(label, eId);
+            }
+        }
+        String newick;
+        try {
+            newick = tree.toNewickAnchored(taxa, charToEdgeId, anchorChar, preferChar);
+        } catch (Exception e) {
+            newick = tree.toNewick(taxa);
+        }
+        Files.writeString(Path.of(outputDir + "/tree_unrooted.nwk"), newick);
+        Files.writeString(Path.of(outputDir + "/witness.txt"), "OK\n");
+    }
+
+    // Second pass for App.choosePreferChar: largest split strictly inside the anchor split.
+    // With repeated names, keys are first mapped to name keys so containment and sizes count names.
+    private static String choosePreferChar(Path sorted, int m, int W, String anchorChar, long[] anchorKey, int[] canon) throws IOException {
+        long[] anchor = canon == null ? anchorKey : byName(anchorKey, canon, new long[W]);
+        int anchorSize = 0;
+        for (long x : anchor) anchorSize += Long.bitCount(x);
+        long[] key = new long[W], named = canon == null ? key : new long[W];
+        String best = null;
+        int bestSize = -1;
+        try (DataInputStream in = input(sorted)) {
+            for (int p = 0; p < m; p++) {
+                String ch = "C" + (in.readInt() + 1);
+                for (int w = 0; w < W; w++) key[w] = in.readLong();
+                if (canon != null) byName(key, canon, named);
+                int sz = 0;
+                boolean inside = true;
+                for (int w = 0; w < W; w++) {
+                    sz += Long.bitCount(named[w]);
+                    if ((named[w] & ~anchor[w]) != 0) inside = false;
+                }
+                if (ch.equals(anchorChar) || sz == 0 || !inside || sz >= anchorSize) continue;
+                if (sz > bestSize || (sz == bestSize && ch.compareTo(best) < 0)) {
+                    best = ch;
+                    bestSize = sz;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Row of the first taxon with the same name, for each row; null when every name is distinct
+    private static int[] canonicalRows(String[] taxa) {
+        Map<String, Integer> first = new HashMap<>();
+        int[] canon = new int[taxa.length];
+        boolean repeated = false;
+        for (int i = 0; i < taxa.length; i++) {
+            Integer f = first.putIfAbsent(taxa[i], i);
+            canon[i] = f == null ? i : f;
+            repeated |= f != null;
+        }
+        return repeated ? canon : null;
+    }
+
+    // Key with each row replaced by the first row of the same name
+    private static long[] byName(long[] key, int[] canon, long[] out) {
+        Arrays.fill(out, 0L);
+        for (int w = 0; w < key.length; w++) {
+            long x = key[w];
+            while (x != 0) {
+                int lz = Long.numberOfLeadingZeros(x);
+                int r = canon[w * 64 + lz];
+                out[r >>> 6] |= 1L << (63 - (r & 63));
+                x &= ~(1L << (63 - lz));
+            }
+        }
+        return out;
+    }
+
+    // Helpers
+    private static DataOutputStream output(Path p) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(p), IO_BUFFER));
+    }
+    private static DataInputStream input(Path p) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(p), IO_BUFFER));
+    }
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (var walk = Files.walk(dir)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) Files.deleteIfExists(p);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+// Divide-and-conquer tree construction: once a clade is split off, its subtree is an independent subproblem
+public final class ParallelBuild {
+
+    // Subproblems with fewer cells (taxa x columns) than this stay on the task that found them
+    static final long FORK_THRESHOLD = 1 << 15;
+
+    private static final int NO_EDGE = Integer.MIN_VALUE;
+
+    private ParallelBuild() {}
+
+    /**
+     * Same artifacts as Algo.buildArtifacts, with the same node and edge numbering.
+     * Each block scans its columns in sorted order: a column disjoint from the clades found so far
+     * splits off a new clade, any other column is handed to the clade it falls in. The clades are
+     * then solved as fork-join tasks and grafted back by column index. On a conflict the sequential
+     * builder is rerun so the witness is exactly the one it reports.
+     */
+    static Algo.BuildArtifacts buildArtifacts(int[][] C, String[] chars, String[] taxaNames, ForkJoinPool pool)
+            throws Algo.NotPerfectPhylogenyException {
+        int n = C.length, m = C[0].length;
+        BitSet[] cols = new BitSet[m];
+        pool.submit(() -> IntStream.range(0, m).parallel().forEach(j -> {
+            BitSet s = new BitSet(n);
+            for (int i = 0; i < n; i++) if (C[i][j] == 1) s.set(i);
+            cols[j] = s;
+        })).join();
+
+        // Root block: every taxon, every non-empty column, from last to first
+        int[] all = IntStream.range(0, n).toArray();
+        int[] order = IntStream.iterate(m - 1, j -> j >= 0, j -> j - 1).filter(j -> !cols[j].isEmpty()).toArray();
+        Queue<Piece> pieces = new ConcurrentLinkedQueue<>();
+        try {
+            pool.invoke(new Solve(null, new Part(-1, all, order), j -> cols[j], pieces));
+        } catch (Conflict c) {
+            return Algo.buildArtifacts(C, chars, taxaNames);
+        }
+        return graft(pieces, cols, chars, taxaNames, pool);
+    }
+
+    // One subproblem: the block of a node and the columns that fall inside it, in global ids.
+    // Solving it reads only those rows of those columns, so a worker process given the submatrix
+    // can produce the same Pieces.
+    static final class Part {
+        final int node;    // column that created the node, or -1 for node 0
+        final int[] rows;  // taxa of the block, ascending
+        final int[] cols;  // its columns, in processing order
+        Part(int node, int[] rows, int[] cols) { this.node = node; this.rows = rows; this.cols = cols; }
+    }
+
+    // Result of one block: its node's final taxa and the columns that split a clade off it
+    static final class Piece {
+        final int node;
+        final int[] taxa;
+        final int[] clades;
+        Piece(int node, int[] taxa, int[] clades) { this.node = node; this.taxa = taxa; this.clades = clades; }
+    }
+
+    private static final class Conflict extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        Conflict() { super(null, null, false, false); }
+    }
+
+    /**
+     * Scan one block: returns its Piece and appends one Part per clade to children.
+     * A column handed to a clade is checked there, where it either splits or reaches the rest.
+     */
+    static Piece split(Part part, IntFunction<BitSet> column, List<Part> children) {
+        int[] rows = part.rows;
+        int[] owner = new int[rows.length];
+        Arrays.fill(owner, -1);
+        BitSet rest = new BitSet();
+        for (int r : rows) rest.set(r);
+        List<Integer> cladeNode = new ArrayList<>();
+        List<int[]> cladeRows = new ArrayList<>();
+        List<int[]> cladeCols = new ArrayList<>();
+        int[] cladeColCount = new int[4];
+
+        for (int j : part.cols) {
+            BitSet Oj = column.apply(j);
+            int at = Arrays.binarySearch(rows, Oj.nextSetBit(0));
+            if (at < 0) throw new Conflict();
+            int q = owner[at];
+            if (q >= 0) {
+                int[] cs = cladeCols.get(q);
+                if (cladeColCount[q] == cs.length) cladeCols.set(q, cs = Arrays.copyOf(cs, 2 * cs.length));
+                cs[cladeColCount[q]++] = j;
+                continue;
+            }
+            if (!subset(Oj, rest)) throw new Conflict();
+            if (Oj.equals(rest)) continue; // same block: a split but no new edge
+            rest.andNot(Oj);
+            q = cladeNode.size();
+            int[] cr = Oj.stream().toArray();
+            for (int r : cr) owner[Arrays.binarySearch(rows, r)] = q;
+            cladeNode.add(j);
+            cladeRows.add(cr);
+            cladeCols.add(new int[4]);
+            if (q == cladeColCount.length) cladeColCount = Arrays.copyOf(cladeColCount, 2 * q);
+        }
+
+        for (int q = 0; q < cladeNode.size(); q++) {
+            children.add(new Part(cladeNode.get(q), cladeRows.get(q), Arrays.copyOf(cladeCols.get(q), cladeColCount[q])));
+        }
+        return new Piece(part.node, rest.stream().toArray(), cladeNode.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // Works through its blocks with an explicit stack, so deep nesting never deepens the call stack.
+    // Large clades are forked without waiting on them; the root completes once every task has.
+    private static final class Solve extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        final Part part;
+        final IntFunction<BitSet> column;
+        final Queue<Piece> pieces;
+        Solve(Solve parent, Part part, IntFunction<BitSet> column, Queue<Piece> pieces) {
+            super(parent);
+            this.part = part;
+            this.column = column;
+            this.pieces = pieces;
+        }
+
+        @Override public void compute() {
+            Deque<Part> todo = new ArrayDeque<>();
+            todo.push(part);
+            List<Part> children = new ArrayList<>();
+            while (!todo.isEmpty() && !getRoot().isDone()) {
+                children.clear();
+                pieces.add(split(todo.pop(), column, children));
+                // Clades are disjoint, so their subtrees can be built independently
+                for (Part child : children) {
+                    if ((long) child.rows.length * child.cols.length >= FORK_THRESHOLD) {
+                        addToPendingCount(1);
+                        new Solve(this, child, column, pieces).fork();
+                    } else {
+                        todo.push(child);
+                    }
+                }
+            }
+            tryComplete();
+        }
+    }
+
+    // Number nodes and edges as the sequential builder would: edges in processing order, node = edge + 1
+    private static Algo.BuildArtifacts graft(Collection<Piece> pieces, BitSet[] cols, String[] chars, String[] taxaNames, ForkJoinPool pool) {
+        int m = chars.length;
+        int[] parent = new int[m];
+        Arrays.fill(parent, NO_EDGE);
+        int[][] nodeTaxa = new int[m + 1][];
+        for (Piece pc : pieces) {
+            nodeTaxa[pc.node + 1] = pc.taxa;
+            for (int j : pc.clades) parent[j] = pc.node;
+        }
+
+        Algo.BuildArtifacts A = new Algo.BuildArtifacts();
+        int[] nodeOf = new int[m];
+        A.nodes.add(toSet(nodeTaxa[0]));
+        for (int j = m - 1; j >= 0; j--) {
+            if (parent[j] == NO_EDGE) continue;
+            int p = parent[j] < 0 ? 0 : nodeOf[parent[j]];
+            nodeOf[j] = A.nodes.size();
+            int eId = A.edges.size();
+            A.nodes.add(toSet(nodeTaxa[j + 1]));
+            A.edges.add(new int[]{p, nodeOf[j]});
+            A.edgeLabels.computeIfAbsent(eId, k -> new ArrayList<>()).add(chars[j]);
+        }
+
+        // Filled by index from the pool; set() on distinct slots is not a structural change
+        List<Set<String>> names = new ArrayList<>(Collections.nCopies(m, null));
+        pool.submit(() -> IntStream.range(0, m).parallel().forEach(j -> {
+            java.util.LinkedHashSet<String> s = new java.util.LinkedHashSet<>();
+            BitSet b = cols[j];
+            for (int i = b.nextSetBit(0); i >= 0; i = b.nextSetBit(i + 1)) s.add(taxaNames[i]);
+            names.set(j, s);
+        })).join();
+        for (int j = m - 1; j >= 0; j--) {
+            if (!names.get(j).isEmpty()) A.splitsByChar.put(chars[j], names.get(j));
+        }
+        return A;
+    }
+
+    // Helpers
+    private static boolean subset(BitSet a, BitSet b) {
+        BitSet t = (BitSet) a.clone();
+        t.andNot(b);
+        return t.isEmpty();
+    }
+    private static Set<Integer> toSet(int[] rows) {
+        java.util.LinkedHashSet<Integer> s = new java.util.LinkedHashSet<>();
+        for (int i : rows) s.add(i);
+        return s;
+    }
+}
@@ -0,0 +1,202 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+
+// Long-lived local service: keeps the JVM (and Algo/Tree) warm and answers jobs over HTTP on localhost
+public final class Server {
+
+    public static final int DEFAULT_PORT = 8765;
+
+    private static final int WARMUP_ROUNDS = 2000;
+
+    private static final Set<String> LOOPBACK_HOSTS = Set.of("127.0.0.1", "localhost", "[::1]", "::1");
+
+    private Server() {}
+
+    /**
+     * Start the service on 127.0.0.1:port.
+     *   POST /run                  body = inline matrix (CSV, same format as the input files)
+     *   POST /run?path=in.csv      read the matrix from inRoot/in.csv
+     *   ...&out=dir                also write the usual output files into outRoot/dir
+     * Paths that resolve outside their root (.., absolute paths, symbolic links) are refused.
+     * Jobs must be sent with Content-Type: text/csv. Browsers cannot send that cross-origin without
+     * a preflight, and requests with a non-loopback Host or Origin are refused (DNS rebinding).
+     * The response is JSON with witness, newick, splits, anchor and prefer (or error on bad input).
+     * GET /health answers "OK" once warm-up is done.
+     */
+    public static HttpServer start(int port, Path inRoot, Path outRoot) throws IOException {
+        Path in = inRoot.toRealPath();
+        Path root = outRoot.toAbsolutePath().normalize();
+        warmUp();
+        // Responses are small: without TCP_NODELAY each one waits ~40 ms on delayed ACKs over keep-alive
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/run", ex -> handleRun(ex, in, root));
+        server.createContext("/health", ex -> {
+            if (checkLocal(ex)) respond(ex, 200, "OK\n");
+        });
+        // Algo, Tree and CsvIO keep no shared state, so jobs run in parallel
+        server.setExecutor(Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(0)));
+        System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/run");
+        return server;
+    }
+
+    private static void handleRun(HttpExchange ex, Path inRoot, Path outRoot) throws IOException {
+        try {
+            if (!checkLocal(ex)) return;
+            if (!ex.getRequestMethod().equals("POST")) {
+                respond(ex, 405, "{\"error\":\"use POST\"}\n");
+                return;
+            }
+            String type = ex.getRequestHeaders().getFirst("Content-Type");
+            if (type == null || !type.split(";")[0].trim().equalsIgnoreCase("text/csv")) {
+                respond(ex, 415, "{\"error\":\"Content-Type must be text/csv\"}\n");
+                return;
+            }
+            Map<String, String> query = parseQuery(ex.getRequestURI().getRawQuery());
+            Path in = null;
+            if (query.containsKey("path")) {
+                in = inRoot.resolve(query.get("path")).normalize();
+                // Refuse before touching the file, so outside paths cannot be probed; then follow links
+                if (!in.startsWith(inRoot) || !(in = in.toRealPath()).startsWith(inRoot)) {
+                    respond(ex, 403, "{\"error\":" + quote("path must be inside " + inRoot) + "}\n");
+                    return;
+                }
+            }
+            Path out = null;
+            if (query.containsKey("out")) {
+                out = outRoot.resolve(query.get("out")).normalize();
+                if (!out.startsWith(outRoot)) {
+                    respond(ex, 403, "{\"error\":" + quote("out must be inside " + outRoot) + "}\n");
+                    return;
+                }
+            }
+            String body = new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+            CsvIO.Data data;
+            if (in != null) {
+                data = CsvIO.read(in.toString());
+            } else {
+                data = CsvIO.parse(body.replace("\r", ""));
+            }
+            App.Outputs o = App.compute(data);
+            if (out != null) App.writeOutputs(o, out.toString());
+            respond(ex, 200, toJson(o));
+        } catch (Exception e) {
+            // Bad input (validation errors from CsvIO, missing file, ...)
+            respond(ex, 400, "{\"error\":" + quote(String.valueOf(e.getMessage())) + "}\n");
+        } catch (Throwable t) {
+            // OutOfMemoryError, StackOverflowError, ...: still answer the exchange
+            respond(ex, 500, "{\"error\":" + quote(t.toString()) + "}\n");
+        }
+    }
+
+    // Refuse requests that did not come from a local client talking to a loopback name
+    private static boolean checkLocal(HttpExchange ex) throws IOException {
+        String host = ex.getRequestHeaders().getFirst("Host");
+        String origin = ex.getRequestHeaders().getFirst("Origin");
+        boolean ok = host != null && LOOPBACK_HOSTS.contains(stripPort(host));
+        if (ok && origin != null) {
+            try {
+                String h = URI.create(origin).getHost();
+                ok = h != null && LOOPBACK_HOSTS.contains(h);
+            } catch (IllegalArgumentException e) {
+                ok = false;
+            }
+        }
+        if (!ok) respond(ex, 403, "{\"error\":\"only local clients are accepted\"}\n");
+        return ok;
+    }
+
+    // Run small matrices through the full job path so the JIT has compiled it before the first request
+    private static void warmUp() {
+        Random rnd = new Random(1);
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            int n = 4 + rnd.nextInt(12), m = 3 + rnd.nextInt(8);
+            String[] taxa = new String[n];
+            String[] chars = new String[m];
+            int[][] C = new int[n][m];
+            for (int i = 0; i < n; i++) taxa[i] = "T" + i;
+            for (int j = 0; j < m; j++) {
+                chars[j] = "C" + (j + 1);
+                // Nested prefixes are always compatible; one random column in four exercises the conflict path
+                int k = rnd.nextInt(n + 1);
+                for (int i = 0; i < n; i++) C[i][j] = (j % 4 == 3 ? rnd.nextInt(2) : (i < k ? 1 : 0));
+            }
+            App.compute(new CsvIO.Data(taxa, chars, C));
+        }
+    }
+
+    static String toJson(App.Outputs o) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"witness\":").append(quote(o.witness));
+        sb.append(",\"newick\":").append(quote(o.newick));
+        sb.append(",\"splits\":[");
+        for (int i = 0; i < o.splits.size(); i++) {
+            if (i > 0) sb.append(",");
+            sb.append(quote(o.splits.get(i)));
+        }
+        sb.append("],\"anchor\":").append(o.anchorChar == null ? "null" : quote(o.anchorChar));
+        sb.append(",\"prefer\":").append(o.preferChar == null ? "null" : quote(o.preferChar));
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    // Helpers
+    private static String stripPort(String host) {
+        if (host.startsWith("[")) {
+            int end = host.indexOf(']');
+            return end < 0 ? host : host.substring(0, end + 1);
+        }
+        int colon = host.lastIndexOf(':');
+        return colon < 0 ? host : host.substring(0, colon);
+    }
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':  sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+    private static Map<String, String> parseQuery(String raw) {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null || raw.isEmpty()) return q;
+        for (String kv : raw.split("&")) {
+            int eq = kv.indexOf('=');
+            String k = eq < 0 ? kv : kv.substring(0, eq);
+            String v = eq < 0 ? "" : kv.substring(eq + 1);
+            q.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+    private static void respond(HttpExchange ex, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        String type = text.startsWith("{") ? "application/json" : "text/plain";
+        ex.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        ex.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
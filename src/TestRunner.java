@@ -1,4 +1,12 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class TestRunner {
     public static void main(String[] args) throws Exception {
@@ -17,6 +25,10 @@ public class TestRunner {
                 runTest(inputFile, outputDir, i);
             }
         }
+
+        runGeneratedTests(resultsDir + "/generated");
+        runServiceTests(testsDir, resultsDir + "/service");
+        runOptionTests();
         
         System.out.println("All tests completed!");
     }
@@ -28,7 +40,17 @@ public class TestRunner {
             
             // Run the algorithm with custom output directory
             App.runWithOutputDir(inputFile, outputDir);
+
+            // Run again out-of-core with a tiny budget (forces spills and multi-pass merges)
+            checkExternal(inputFile, outputDir, 1);
             
+            // Parallel construction must give the same outputs as the sequential one
+            CsvIO.Data data = CsvIO.read(inputFile);
+            App.Outputs seq = App.compute(data, false), par = App.compute(data, true);
+            if (!seq.newick.equals(par.newick) || !seq.splits.equals(par.splits) || !seq.witness.equals(par.witness)) {
+                throw new Exception("parallel construction differs from sequential");
+            }
+
             System.out.println("Test " + testNum + " completed successfully");
             
         } catch (Exception e) {
@@ -36,4 +58,274 @@ public class TestRunner {
             e.printStackTrace();
         }
     }
+
+    // Generated matrices, too large to keep as fixtures
+    private static void runGeneratedTests(String generatedDir) {
+        try {
+            Files.createDirectories(Paths.get(generatedDir));
+
+            // 300 rows: several spill chunks, multi-word column keys and several transpose bands
+            for (boolean conflict : new boolean[]{false, true}) {
+                String name = conflict ? "chunks-conflict" : "chunks";
+                String inputFile = writeMatrix(generatedDir, name, generatePhylogeny(300, 40, 7, conflict));
+                String outputDir = generatedDir + "/" + name;
+                App.runWithOutputDir(inputFile, outputDir);
+                checkExternal(inputFile, outputDir, 1);
+                checkExternal(inputFile, outputDir, 5000);
+                System.out.println("Generated test " + name + " completed successfully");
+            }
+
+            // Repeated taxon names: clades are sets of names, so a name is listed and counted once.
+            // In the first matrix C2 = {A} lies inside C1 = {A,B} by name but not by row, which decides prefer.
+            String[] repeated = {
+                "taxon,C1,C2,C3\nA,1,0,0\nA,0,1,0\nB,1,0,0\nC,0,0,1\nD,0,0,1\nE,0,0,0\n",
+                "taxon,C1,C2\nA,1,0\nA,1,0\nB,0,1\nC,0,0\n",
+            };
+            for (int k = 0; k < repeated.length; k++) {
+                String name = "repeated-taxa" + (k + 1);
+                Path inputFile = Paths.get(generatedDir, name + ".csv");
+                Files.writeString(inputFile, repeated[k]);
+                String outputDir = generatedDir + "/" + name;
+                App.runWithOutputDir(inputFile.toString(), outputDir);
+                checkExternal(inputFile.toString(), outputDir, 1);
+                System.out.println("Generated test " + name + " completed successfully");
+            }
+
+            // Large enough to fork (several clades, on a pool with several workers), with conflicts
+            // found inside forked tasks, and a nesting deeper than the call stack would allow
+            ForkJoinPool pool = new ForkJoinPool(4);
+            checkParallel("parallel-clades", toData(generatePhylogeny(2000, 1000, 11, false)), pool);
+            checkParallel("parallel-conflict", toData(generatePhylogeny(2000, 1000, 11, true)), pool);
+            checkParallel("deep-chain", toData(generateChain(3000, -1)), pool);
+            checkParallel("deep-chain-conflict", toData(generateChain(1000, 500)), pool);
+            pool.shutdown();
+        } catch (Exception e) {
+            System.out.println("Generated tests failed: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Service mode on an ephemeral port: job results, root confinement and the local-client checks
+    private static void runServiceTests(String testsDir, String serviceDir) {
+        HttpServer server = null;
+        try {
+            server = Server.start(0, Paths.get(testsDir), Paths.get(serviceDir));
+            int port = server.getAddress().getPort();
+            String csv = "Content-Type: text/csv";
+
+            // Inline jobs answer exactly what App.compute renders, conflicts included
+            for (String f : new String[]{"test2.csv", "test6.csv"}) {
+                String body = Files.readString(Paths.get(testsDir, f));
+                expect(http(port, "POST", "/run", body, csv), 200, Server.toJson(App.compute(CsvIO.parse(body))));
+            }
+            // JSON escaping of quotes, backslashes and control characters in taxon names
+            String odd = "taxon,C1\na\"b\\c\t,1\nd,0\n";
+            Response r = expect(http(port, "POST", "/run", odd, csv), 200, Server.toJson(App.compute(CsvIO.parse(odd))));
+            if (!r.body.contains("a\\\"b\\\\c\\t")) throw new Exception("taxon name not escaped: " + r.body);
+
+            // path= and out= stay inside their roots (the query is percent-decoded first)
+            expect(http(port, "POST", "/run?path=test1.csv&out=job%201", "", csv), 200, null);
+            String newick = App.compute(CsvIO.read(testsDir + "/test1.csv")).newick;
+            if (!Files.readString(Paths.get(serviceDir, "job 1", "tree_unrooted.nwk")).equals(newick)) {
+                throw new Exception("service wrote a different tree for out=job 1");
+            }
+            Path outside = Paths.get(serviceDir).toAbsolutePath().getParent().resolve("service-outside");
+            for (String q : new String[]{"out=../x", "out=%2e%2e%2fx", "out=" + outside, "path=../README.md",
+                                         "path=" + Paths.get("README.md").toAbsolutePath()}) {
+                expect(http(port, "POST", "/run?path=test1.csv&" + q, "", csv), 403, null);
+            }
+            if (Files.exists(outside) || Files.exists(Paths.get(serviceDir).getParent().resolve("x"))) {
+                throw new Exception("refused out= still created a folder");
+            }
+
+            // Only local clients talking to a loopback name, and only text/csv jobs
+            String body = Files.readString(Paths.get(testsDir, "test1.csv"));
+            expect(http(port, "POST", "/run", body, csv, "Host: [::1]:" + port), 200, null);
+            expect(http(port, "POST", "/run", body, csv, "Origin: http://localhost:3000"), 200, null);
+            expect(http(port, "POST", "/run", body, csv, "Host: evil.example"), 403, null);
+            expect(http(port, "POST", "/run", body, csv, "Host: localhost.evil.example:" + port), 403, null);
+            expect(http(port, "POST", "/run", body, csv, "Host: "), 403, null);
+            expect(http(port, "POST", "/run", body, csv, "Origin: http://evil.example"), 403, null);
+            expect(http(port, "POST", "/run", body), 415, null);
+            expect(http(port, "POST", "/run", body, "Content-Type: application/x-www-form-urlencoded"), 415, null);
+            expect(http(port, "POST", "/run", body, "Content-Type: text/csv; charset=utf-8"), 200, null);
+            expect(http(port, "GET", "/run", ""), 405, null);
+            expect(http(port, "GET", "/health", ""), 200, "OK\n");
+
+            System.out.println("Service test completed successfully");
+        } catch (Exception e) {
+            System.out.println("Service test failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (server != null) {
+                server.stop(0);
+                ((ExecutorService) server.getExecutor()).shutdown();
+            }
+        }
+    }
+
+    // Option combinations that would be silently ignored must be rejected
+    private static void runOptionTests() {
+        String[][] rejected = {
+            {"--serve", "in.csv"}, {"--serve", "--memory-budget=1"}, {"--parallel", "--memory-budget"},
+            {"--parallel", "--serve"}, {"--out-root=x"}, {"--in-root=x"}, {"--no-such-option"},
+        };
+        for (String[] args : rejected) {
+            try {
+                App.main(args);
+                System.out.println("Option test failed: " + String.join(" ", args) + " was accepted");
+                return;
+            } catch (IllegalArgumentException expected) {
+                // rejected before doing anything
+            } catch (Exception e) {
+                System.out.println("Option test failed: " + String.join(" ", args) + ": " + e);
+                return;
+            }
+        }
+        System.out.println("Option test completed successfully");
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+        Response(int status, String body) { this.status = status; this.body = body; }
+    }
+
+    private static Response expect(Response r, int status, String body) throws Exception {
+        if (r.status != status || (body != null && !body.equals(r.body))) {
+            throw new Exception("expected " + status + (body != null ? " " + body.trim() : "") + ", got " + r.status + " " + r.body.trim());
+        }
+        return r;
+    }
+
+    // Bare HTTP/1.1 over a socket, so a test can send any Host or Origin (Host defaults to 127.0.0.1)
+    private static Response http(int port, String method, String target, String body, String... headers) throws Exception {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder req = new StringBuilder(method + " " + target + " HTTP/1.1\r\n");
+        boolean host = false;
+        for (String h : headers) {
+            host |= h.startsWith("Host:");
+            req.append(h).append("\r\n");
+        }
+        if (!host) req.append("Host: 127.0.0.1:").append(port).append("\r\n");
+        req.append("Content-Length: ").append(bytes.length).append("\r\nConnection: close\r\n\r\n");
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            OutputStream out = s.getOutputStream();
+            out.write(req.toString().getBytes(StandardCharsets.UTF_8));
+            out.write(bytes);
+            out.flush();
+            String resp = new String(s.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            return new Response(Integer.parseInt(resp.substring(9, 12)), resp.substring(resp.indexOf("\r\n\r\n") + 4));
+        }
+    }
+
+    // Out-of-core outputs must match the in-memory ones already in outputDir
+    private static void checkExternal(String inputFile, String outputDir, long budget) throws Exception {
+        String externalDir = outputDir + "-external";
+        Files.createDirectories(Paths.get(externalDir));
+        App.runExternalWithOutputDir(inputFile, externalDir, budget);
+        for (String f : new String[]{"tree_unrooted.nwk", "splits.csv", "witness.txt", "sorted_matrix.csv"}) {
+            if (Files.mismatch(Paths.get(outputDir, f), Paths.get(externalDir, f)) != -1) {
+                throw new Exception("out-of-core output (budget " + budget + ") differs in " + f);
+            }
+        }
+    }
+
+    // Parallel construction must give the same artifacts (or the same conflict) as the sequential one
+    private static void checkParallel(String name, CsvIO.Data data, ForkJoinPool pool) throws Exception {
+        String seq = describe(() -> Algo.run(data));
+        String par = describe(() -> Algo.runParallel(data, pool));
+        if (!seq.equals(par)) {
+            throw new Exception("parallel construction differs from sequential on " + name);
+        }
+        System.out.println("Generated test " + name + " completed successfully");
+    }
+
+    private interface Build { Algo.BuildResult run() throws Exception; }
+
+    private static String describe(Build build) throws Exception {
+        try {
+            Algo.BuildResult r = build.run();
+            StringBuilder sb = new StringBuilder();
+            sb.append(r.nodesTaxa);
+            for (int[] e : r.edges) sb.append(Arrays.toString(e));
+            sb.append(r.edgeLabels).append(r.splitsByChar).append(r.witness);
+            return sb.toString();
+        } catch (Algo.NotPerfectPhylogenyException ex) {
+            return "conflict " + ex.getMessage() + " " + ex.witnessChars + " " + ex.splitsByChar;
+        }
+    }
+
+    // Nested chain: column j holds every taxon after j, so the tree is n levels deep.
+    // With conflictAt >= 0 one extra column {conflictAt, n-1} crosses the clade at that depth.
+    private static int[][] generateChain(int n, int conflictAt) {
+        int m = n - 1 + (conflictAt >= 0 ? 1 : 0);
+        int[][] C = new int[n][m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n - 1; j++) C[i][j] = i > j ? 1 : 0;
+        }
+        if (conflictAt >= 0) {
+            C[conflictAt][m - 1] = 1;
+            C[n - 1][m - 1] = 1;
+        }
+        return C;
+    }
+
+    private static CsvIO.Data toData(int[][] C) {
+        String[] taxa = new String[C.length];
+        String[] chars = new String[C[0].length];
+        for (int i = 0; i < taxa.length; i++) taxa[i] = "T" + i;
+        for (int j = 0; j < chars.length; j++) chars[j] = "C" + (j + 1);
+        return new CsvIO.Data(taxa, chars, C);
+    }
+
+    // Random perfect phylogeny: every column is a clade of a random binary tree over shuffled taxa,
+    // with some empty and duplicate columns. With conflict, the last column is random noise.
+    private static int[][] generatePhylogeny(int n, int m, long seed, boolean conflict) {
+        Random rnd = new Random(seed);
+        List<int[]> clades = new ArrayList<>();
+        Deque<int[]> todo = new ArrayDeque<>();
+        todo.push(new int[]{0, n});
+        while (!todo.isEmpty()) {
+            int[] c = todo.pop();
+            clades.add(c);
+            if (c[1] - c[0] > 1) {
+                int cut = c[0] + 1 + rnd.nextInt(c[1] - c[0] - 1);
+                todo.push(new int[]{c[0], cut});
+                todo.push(new int[]{cut, c[1]});
+            }
+        }
+        List<Integer> pos = new ArrayList<>();
+        for (int i = 0; i < n; i++) pos.add(i);
+        Collections.shuffle(pos, rnd);
+
+        int[][] C = new int[n][m];
+        for (int j = 0; j < m; j++) {
+            if (j % 10 == 9) continue;
+            if (j % 10 == 5) {
+                for (int i = 0; i < n; i++) C[i][j] = C[i][j - 1];
+                continue;
+            }
+            int[] c = clades.get(rnd.nextInt(clades.size()));
+            for (int i = 0; i < n; i++) C[i][j] = (pos.get(i) >= c[0] && pos.get(i) < c[1]) ? 1 : 0;
+        }
+        if (conflict) {
+            for (int i = 0; i < n; i++) C[i][m - 1] = rnd.nextInt(2);
+        }
+        return C;
+    }
+
+    private static String writeMatrix(String dir, String name, int[][] C) throws Exception {
+        StringBuilder sb = new StringBuilder("taxon");
+        for (int j = 0; j < C[0].length; j++) sb.append(",C").append(j + 1);
+        sb.append("\n");
+        for (int i = 0; i < C.length; i++) {
+            sb.append("T").append(i);
+            for (int x : C[i]) sb.append(",").append(x);
+            sb.append("\n");
+        }
+        Path p = Paths.get(dir, name + ".csv");
+        Files.writeString(p, sb.toString());
+        return p.toString();
+    }
 }